@@ -30,12 +30,29 @@ import org.voltdb.client.ProcedureCallback;
 
 /**
  * Simple callback that complains if something went badly
- * wrong.
+ * wrong, and optionally records the outcome in a LoadStats.
  * @author drolfe
  *
  */
 public class ComplainOnErrorCallback implements ProcedureCallback {
 
+    /**
+     * Where we record outcomes and latencies. May be null.
+     */
+    LoadStats stats = null;
+
+    public ComplainOnErrorCallback() {
+        super();
+    }
+
+    /**
+     * @param stats - where to record outcomes and latencies
+     */
+    public ComplainOnErrorCallback(LoadStats stats) {
+        super();
+        this.stats = stats;
+    }
+
     @Override
     public void clientCallback(ClientResponse arg0) throws Exception {
         
@@ -43,6 +60,10 @@ public class ComplainOnErrorCallback implements ProcedureCallback {
             TaskMigrateDemoClient.msg("Error Code " + arg0.getStatusString());
         }
 
+        if (stats != null) {
+            stats.report(arg0);
+        }
+
     }
 
 }
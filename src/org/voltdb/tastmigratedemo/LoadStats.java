@@ -0,0 +1,412 @@
+package org.voltdb.tastmigratedemo;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.voltdb.client.ClientResponse;
+
+/**
+ * Counters and a latency histogram for a test run. The histogram has 1ms
+ * buckets up to FINE_LATENCY_LIMIT_MS, 100ms buckets from there up to
+ * MAX_LATENCY_MS and a final bucket for everything slower. Instances
+ * can be turned into a single line of text and back again so that results
+ * from several worker JVMs can be merged into one report.
+ *
+ * @author drolfe
+ *
+ */
+public class LoadStats {
+
+    /**
+     * Latencies below this many milliseconds get a bucket per millisecond.
+     */
+    public static final int FINE_LATENCY_LIMIT_MS = 1000;
+
+    /**
+     * Width of buckets between FINE_LATENCY_LIMIT_MS and MAX_LATENCY_MS
+     */
+    public static final int COARSE_BUCKET_MS = 100;
+
+    /**
+     * Latencies of this many milliseconds or more all go in the last bucket.
+     */
+    public static final int MAX_LATENCY_MS = 10000;
+
+    private static final int BUCKET_COUNT = FINE_LATENCY_LIMIT_MS
+            + ((MAX_LATENCY_MS - FINE_LATENCY_LIMIT_MS) / COARSE_BUCKET_MS) + 1;
+
+    /**
+     * How many transactions completed OK
+     */
+    AtomicLong okCount = new AtomicLong(0);
+
+    /**
+     * How many transactions failed
+     */
+    AtomicLong errorCount = new AtomicLong(0);
+
+    /**
+     * Worst round trip time seen, in milliseconds
+     */
+    AtomicLong maxLatencyMs = new AtomicLong(0);
+
+    /**
+     * How long the run took, in milliseconds
+     */
+    AtomicLong elapsedMs = new AtomicLong(0);
+
+    /**
+     * Total of all round trip times, in milliseconds, so the average isn't
+     * affected by bucket sizes.
+     */
+    AtomicLong latencySumMs = new AtomicLong(0);
+
+    /**
+     * Count of transactions by round trip time - see bucketFor
+     */
+    AtomicLongArray latencyHistogram = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Record the outcome of a single transaction.
+     *
+     * @param ok - true if it succeeded
+     * @param latencyMs - client round trip time in milliseconds
+     */
+    public void report(boolean ok, int latencyMs) {
+
+        if (ok) {
+            okCount.incrementAndGet();
+        } else {
+            errorCount.incrementAndGet();
+        }
+
+        if (latencyMs < 0) {
+            latencyMs = 0;
+        }
+
+        latencyHistogram.incrementAndGet(bucketFor(latencyMs));
+        latencySumMs.addAndGet(latencyMs);
+
+        long oldMax = maxLatencyMs.get();
+        while (latencyMs > oldMax && !maxLatencyMs.compareAndSet(oldMax, latencyMs)) {
+            oldMax = maxLatencyMs.get();
+        }
+
+    }
+
+    /**
+     * Record the outcome of a transaction from its ClientResponse. Failures
+     * that happened on the client side (e.g. a lost connection) have no
+     * meaningful round trip time, so they don't go in the histogram.
+     *
+     * @param response
+     */
+    public void report(ClientResponse response) {
+
+        switch (response.getStatus()) {
+        case ClientResponse.CONNECTION_LOST:
+        case ClientResponse.CONNECTION_TIMEOUT:
+        case ClientResponse.RESPONSE_UNKNOWN:
+            reportError();
+            break;
+        default:
+            report(response.getStatus() == ClientResponse.SUCCESS, response.getClientRoundtrip());
+        }
+
+    }
+
+    /**
+     * Record a transaction that failed without a response from the server,
+     * so there is no round trip time to add to the histogram.
+     */
+    public void reportError() {
+        errorCount.incrementAndGet();
+    }
+
+    /**
+     * @param elapsedMs how long the run took, in milliseconds
+     */
+    public void setElapsedMs(long elapsedMs) {
+        this.elapsedMs.set(elapsedMs);
+    }
+
+    /**
+     * Add another set of stats to this one. Workers run at the same time, so
+     * elapsed time is the longest of the two rather than the sum.
+     *
+     * @param other
+     */
+    public void merge(LoadStats other) {
+
+        okCount.addAndGet(other.okCount.get());
+        errorCount.addAndGet(other.errorCount.get());
+        maxLatencyMs.set(Math.max(maxLatencyMs.get(), other.maxLatencyMs.get()));
+        elapsedMs.set(Math.max(elapsedMs.get(), other.elapsedMs.get()));
+        latencySumMs.addAndGet(other.latencySumMs.get());
+
+        for (int i = 0; i < latencyHistogram.length(); i++) {
+            latencyHistogram.addAndGet(i, other.latencyHistogram.get(i));
+        }
+
+    }
+
+    /**
+     * @param latencyMs
+     * @return which histogram bucket latencyMs belongs in
+     */
+    static int bucketFor(int latencyMs) {
+
+        if (latencyMs < FINE_LATENCY_LIMIT_MS) {
+            return latencyMs;
+        }
+
+        if (latencyMs < MAX_LATENCY_MS) {
+            return FINE_LATENCY_LIMIT_MS + ((latencyMs - FINE_LATENCY_LIMIT_MS) / COARSE_BUCKET_MS);
+        }
+
+        return BUCKET_COUNT - 1;
+    }
+
+    /**
+     * @param bucket
+     * @return the lowest latency, in milliseconds, that goes in 'bucket'
+     */
+    static int bucketLowerBoundMs(int bucket) {
+
+        if (bucket < FINE_LATENCY_LIMIT_MS) {
+            return bucket;
+        }
+
+        return FINE_LATENCY_LIMIT_MS + ((bucket - FINE_LATENCY_LIMIT_MS) * COARSE_BUCKET_MS);
+    }
+
+    /**
+     * Find the latency that 'pct' percent of transactions completed within.
+     * Above FINE_LATENCY_LIMIT_MS this is rounded down to a multiple of
+     * COARSE_BUCKET_MS. A result of MAX_LATENCY_MS means 'MAX_LATENCY_MS or
+     * more' - see formatPercentileMs.
+     *
+     * @param pct - e.g. 99.9
+     * @return latency in milliseconds
+     */
+    public int getPercentileMs(double pct) {
+
+        final long total = getLatencySampleCount();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long threshold = (long) Math.ceil(total * (pct / 100));
+        long runningTotal = 0;
+
+        for (int i = 0; i < latencyHistogram.length(); i++) {
+            runningTotal += latencyHistogram.get(i);
+            if (runningTotal >= threshold) {
+                return bucketLowerBoundMs(i);
+            }
+        }
+
+        return MAX_LATENCY_MS;
+    }
+
+    /**
+     * @param pct - e.g. 99.9
+     * @return getPercentileMs as text, with a '>=' in front if it landed in
+     *         the last bucket and is only a lower bound.
+     */
+    public String formatPercentileMs(double pct) {
+
+        final int percentileMs = getPercentileMs(pct);
+
+        if (percentileMs >= MAX_LATENCY_MS) {
+            return ">=" + percentileMs;
+        }
+
+        return Integer.toString(percentileMs);
+    }
+
+    /**
+     * @return how many transactions completed OK
+     */
+    public long getOkCount() {
+        return okCount.get();
+    }
+
+    /**
+     * @return how many transactions we have a round trip time for
+     */
+    public long getLatencySampleCount() {
+
+        long sampleCount = 0;
+        for (int i = 0; i < latencyHistogram.length(); i++) {
+            sampleCount += latencyHistogram.get(i);
+        }
+
+        return sampleCount;
+    }
+
+    /**
+     * @return how many transactions we know the outcome of
+     */
+    public long getTotalCount() {
+        return okCount.get() + errorCount.get();
+    }
+
+    /**
+     * @return a single line of text that fromWireString can turn back into
+     *         a LoadStats.
+     */
+    public String toWireString() {
+
+        StringBuilder b = new StringBuilder();
+        b.append(okCount.get());
+        b.append(' ');
+        b.append(errorCount.get());
+        b.append(' ');
+        b.append(maxLatencyMs.get());
+        b.append(' ');
+        b.append(elapsedMs.get());
+        b.append(' ');
+        b.append(latencySumMs.get());
+        b.append(' ');
+
+        for (int i = 0; i < latencyHistogram.length(); i++) {
+            if (i > 0) {
+                b.append(',');
+            }
+            b.append(latencyHistogram.get(i));
+        }
+
+        return b.toString();
+    }
+
+    /**
+     * Create a LoadStats from the output of toWireString
+     *
+     * @param wireString
+     * @return a new LoadStats
+     * @throws IllegalArgumentException if wireString is malformed
+     */
+    public static LoadStats fromWireString(String wireString) {
+
+        String[] fields = wireString.trim().split(" ");
+
+        if (fields.length != 6) {
+            throw new IllegalArgumentException("Expected 6 fields, got " + fields.length + ": " + wireString);
+        }
+
+        LoadStats s = new LoadStats();
+        s.okCount.set(Long.parseLong(fields[0]));
+        s.errorCount.set(Long.parseLong(fields[1]));
+        s.maxLatencyMs.set(Long.parseLong(fields[2]));
+        s.elapsedMs.set(Long.parseLong(fields[3]));
+        s.latencySumMs.set(Long.parseLong(fields[4]));
+
+        String[] buckets = fields[5].split(",");
+
+        if (buckets.length != s.latencyHistogram.length()) {
+            throw new IllegalArgumentException(
+                    "Expected " + s.latencyHistogram.length() + " histogram buckets, got " + buckets.length);
+        }
+
+        for (int i = 0; i < buckets.length; i++) {
+            s.latencyHistogram.set(i, Long.parseLong(buckets[i]));
+        }
+
+        return s;
+    }
+
+    /**
+     * Print a summary of this run using TaskMigrateDemoClient.msg.
+     *
+     * @param title
+     */
+    public void printReport(String title) {
+
+        TaskMigrateDemoClient.msg(title);
+        TaskMigrateDemoClient.msg("Transactions OK/Failed: " + okCount.get() + "/" + errorCount.get());
+
+        if (elapsedMs.get() > 0) {
+            TaskMigrateDemoClient.msg(String.format("Elapsed ms: %d, achieved TPS (OK only): %d, error rate: %.2f%%",
+                    elapsedMs.get(), getAchievedTps(), getErrorPct()));
+        }
+
+        TaskMigrateDemoClient.msg(String.format("Latency ms: avg=%.2f p50=%s p95=%s p99=%s p99.9=%s max=%d",
+                getAverageMs(), formatPercentileMs(50), formatPercentileMs(95), formatPercentileMs(99),
+                formatPercentileMs(99.9), maxLatencyMs.get()));
+    }
+
+    /**
+     * @return successful transactions per second over the whole run. Failures
+     *         don't count, so a run that fails fast doesn't look like it kept
+     *         up.
+     */
+    public long getAchievedTps() {
+
+        if (elapsedMs.get() == 0) {
+            return 0;
+        }
+
+        return (okCount.get() * 1000) / elapsedMs.get();
+    }
+
+    /**
+     * @return failed transactions as a percentage of all transactions
+     */
+    public double getErrorPct() {
+
+        final long total = getTotalCount();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        return (errorCount.get() * 100d) / total;
+    }
+
+    /**
+     * @return mean latency in milliseconds
+     */
+    public double getAverageMs() {
+
+        final long total = getLatencySampleCount();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        return (double) latencySumMs.get() / total;
+    }
+
+    /**
+     * @return worst latency in milliseconds
+     */
+    public long getMaxLatencyMs() {
+        return maxLatencyMs.get();
+    }
+
+}
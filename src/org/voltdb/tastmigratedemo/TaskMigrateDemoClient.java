@@ -25,14 +25,21 @@ import java.text.SimpleDateFormat;
  * OTHER DEALINGS IN THE SOFTWARE.
  */
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientConfig;
 import org.voltdb.client.ClientFactory;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcCallException;
 import org.voltdb.voltutil.schemabuilder.VoltDBSchemaBuilder;
 
 public class TaskMigrateDemoClient {
@@ -157,6 +164,26 @@ public class TaskMigrateDemoClient {
     final String testProcName = "GetDrone";
     final Object[] testParams = { new Long(1) };
 
+    /**
+     * Send ReportLocation using async callbacks from a single thread
+     */
+    public static final String MODE_ASYNC = "async";
+
+    /**
+     * Send ReportLocation using blocking calls from virtual threads. Needs
+     * Java 21 or later at runtime.
+     */
+    public static final String MODE_VIRTUAL_THREADS = "vthreads";
+
+    /**
+     * Default upper limit on virtual threads. Past this point each thread
+     * looks after a group of drones instead of just one.
+     */
+    public static final int DEFAULT_MAX_VIRTUAL_THREADS = 1000000;
+
+    final double baseLatitude = 51.4997138d;
+    final double baseLongitude = -0.1436013d;
+
     /**
      * VoltDB client object
      */
@@ -182,6 +209,18 @@ public class TaskMigrateDemoClient {
      */
     int size = 0;
 
+    /**
+     * Lowest drone id we use. Drones are numbered firstDroneId to
+     * firstDroneId + size - 1, so several clients can share a cluster
+     * without overlapping.
+     */
+    long firstDroneId = 0;
+
+    /**
+     * Counters and latencies for this run
+     */
+    LoadStats stats = new LoadStats();
+
     /**
      * Class to create a run a demo involving VoltDB Tasks and the MIGRATE command.
      * 
@@ -192,11 +231,27 @@ public class TaskMigrateDemoClient {
      * @param size - how many drones, e.g. 10000000
      */
     public TaskMigrateDemoClient(String hostnames, long randomSeed, int runSeconds, long tps, int size) {
+        this(hostnames, randomSeed, runSeconds, tps, size, 0);
+    }
+
+    /**
+     * Class to create a run a demo involving VoltDB Tasks and the MIGRATE command.
+     * 
+     * @param hostnames comma delimited list of hosts
+     * @param randomSeed - used to make random behavior reproducible
+     * @param runSeconds - how long to run, in seconds
+     * @param tps - target Transactions Per Second, e.g. 50000
+     * @param size - how many drones, e.g. 10000000
+     * @param firstDroneId - lowest drone id to use, e.g. 0
+     */
+    public TaskMigrateDemoClient(String hostnames, long randomSeed, int runSeconds, long tps, int size,
+            long firstDroneId) {
         super();
         this.r = new Random(randomSeed);
         this.runSeconds = runSeconds;
         this.tps = tps;
         this.size = size;
+        this.firstDroneId = firstDroneId;
 
         try {
             client = connectVoltDB(hostnames);
@@ -208,8 +263,11 @@ public class TaskMigrateDemoClient {
 
     /**
      * Create and run the Task and Migrate demo.
-     * Parameters: hostnames, tps, size, seconds
+     * Parameters: hostnames, tps, size, seconds, [mode], [threads]
+     * where mode is 'async' (the default) or 'vthreads', and threads is how
+     * many virtual threads to use in 'vthreads' mode.
      * e.g.: localhost 30000 10000000 120
+     * or:   localhost 30000 10000000 120 vthreads 100000
      */
     public static void main(String[] args) {
 
@@ -219,6 +277,14 @@ public class TaskMigrateDemoClient {
         long tps = Integer.parseInt(args[1]);
         final int size = Integer.parseInt(args[2]);
         final int seconds = Integer.parseInt(args[3]);
+        final String mode = args.length > 4 ? args[4] : MODE_ASYNC;
+        final int threadCount = args.length > 5 ? Integer.parseInt(args[5])
+                : Math.min(size, DEFAULT_MAX_VIRTUAL_THREADS);
+
+        if (tps <= 0) {
+            error("tps must be greater than zero, not " + tps);
+            System.exit(1);
+        }
 
         TaskMigrateDemoClient ccMakeData = new TaskMigrateDemoClient(hostnames, 42, seconds, tps, size);
         try {
@@ -228,9 +294,20 @@ public class TaskMigrateDemoClient {
             System.exit(1);
 
         }
-        ccMakeData.loadData(size);
+
+        if (mode.equalsIgnoreCase(MODE_VIRTUAL_THREADS)) {
+            try {
+                ccMakeData.loadDataVirtualThreads(size, threadCount);
+            } catch (Exception e) {
+                error(e.toString());
+                System.exit(1);
+            }
+        } else {
+            ccMakeData.loadData(size);
+        }
 
         ccMakeData.disconnect();
+        ccMakeData.getStats().printReport("Results:");
         ccMakeData = null;
 
         msg("Finished");
@@ -241,26 +318,30 @@ public class TaskMigrateDemoClient {
      * Run the demo with 'size' drones.
      * @param size
      */
-    private void loadData(int size) {
+    void loadData(int size) {
 
-        final double baseLatitude = 51.4997138d;
-        final double baseLongitude = -0.1436013d;
+        if (tps <= 0) {
+            error("tps must be greater than zero, not " + tps);
+            return;
+        }
 
         double[] latitudes = new double[size];
         double[] longitudes = new double[size];
 
-        for (int i = 0; i < latitudes.length; i++) {
-            latitudes[i] = baseLatitude;
-            longitudes[i] = baseLongitude + (i / 10000f) % 180;
-        }
+        initLocations(latitudes, longitudes);
 
         int counter = 0;
 
-        ComplainOnErrorCallback coec = new ComplainOnErrorCallback();
+        ComplainOnErrorCallback coec = new ComplainOnErrorCallback(stats);
+
+        // Transaction 'n' is due at startNs + (n * nsPerTxn), which holds
+        // the rate steady even when tps isn't a multiple of 1000...
+        final double nsPerTxn = 1000000000d / tps;
+        long scheduleStartNs = System.nanoTime();
+        long scheduledCount = 0;
 
+        final long startMs = System.currentTimeMillis();
         final long endMs = System.currentTimeMillis() + (runSeconds * 1000);
-        long currentMs = System.currentTimeMillis();
-        int tpThisMs = 0;
         
         
         msg("Starting test run at " + tps + " transactions per second for " + runSeconds + " seconds");
@@ -268,52 +349,268 @@ public class TaskMigrateDemoClient {
         try {
             while (System.currentTimeMillis() < endMs) {
 
-                if (tpThisMs++ > (tps / 1000)) {
+                final long dueNs = scheduleStartNs + (long) (scheduledCount++ * nsPerTxn);
+                long waitNs = dueNs - System.nanoTime();
+
+                if (waitNs > 0) {
 
                     // but sleep if we're moving too fast...
-                    while (currentMs == System.currentTimeMillis()) {
+                    while (waitNs > 0) {
                         try {
                             Thread.sleep(0, 50000);
                         } catch (InterruptedException e) {
                             error(e.getMessage());
                         }
+                        waitNs = dueNs - System.nanoTime();
                     }
 
-                    currentMs = System.currentTimeMillis();
-                    tpThisMs = 0;
+                } else if (-waitNs > 1000000000L) {
+
+                    // We've fallen over a second behind - start a new
+                    // schedule rather than catch up in a burst...
+                    scheduleStartNs = System.nanoTime();
+                    scheduledCount = 1;
                 }
 
-                int droneId = counter++ % size;
+                int droneIdx = counter++ % size;
                 int speedMps = r.nextInt(10);
-                latitudes[droneId] = latitudes[droneId] + 0.01;
+                latitudes[droneIdx] = latitudes[droneIdx] + 0.01;
 
-                client.callProcedure(coec, "ReportLocation", droneId, latitudes[droneId], longitudes[droneId],
-                        speedMps);
+                client.callProcedure(coec, "ReportLocation", firstDroneId + droneIdx, latitudes[droneIdx],
+                        longitudes[droneIdx], speedMps);
                 
                 if (counter % 100000 == 0) {
-                    ClientResponse status = client.callProcedure("GetStatus");
-                    
-                    msg ("Transaction #" + counter);
-                    msg("Drone Activity By Minute:" );
-                    msg(System. lineSeparator() + status.getResults()[0].toFormattedString());
-                    msg("Missing Drones By Minute:"); 
-                    msg(System. lineSeparator() + status.getResults()[1].toFormattedString());
-                    
+                    printStatus(counter);
                 }
 
             }
+
+            // Wait for outstanding callbacks so stats are complete...
+            client.drain();
+
+        } catch (Exception e) {
+            error(e.getMessage());
+        }
+
+        stats.setElapsedMs(System.currentTimeMillis() - startMs);
+
+    }
+
+    /**
+     * Run the demo with 'size' drones, using 'threadCount' virtual threads that
+     * each make blocking calls for their own group of drones. Each thread
+     * sends its share of 'tps' at evenly spaced intervals.
+     * 
+     * @param size
+     * @param requestedThreadCount - reduced to 'size' if it's bigger
+     * @throws Exception if virtual threads aren't available
+     */
+    void loadDataVirtualThreads(final int size, int requestedThreadCount) throws Exception {
+
+        final ThreadFactory threadFactory = newVirtualThreadFactory();
+
+        if (tps <= 0) {
+            throw new Exception("tps must be greater than zero, not " + tps);
+        }
+
+        if (requestedThreadCount < 1) {
+            throw new Exception("threads must be at least 1, not " + requestedThreadCount);
+        }
+
+        // Each thread needs at least one drone of its own...
+        final int threadCount = Math.min(requestedThreadCount, size);
+
+        if (threadCount < requestedThreadCount) {
+            msg("Only have " + size + " drones, so using " + threadCount + " threads instead of "
+                    + requestedThreadCount);
+        }
+
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+
+        initLocations(latitudes, longitudes);
+
+        final AtomicLong counter = new AtomicLong(0);
+        final long startNs = System.nanoTime();
+        final long endNs = startNs + (runSeconds * 1000000000L);
+        final long threadIntervalNs = (threadCount * 1000000000L) / tps;
+        final Thread[] threads = new Thread[threadCount];
+
+        msg("Starting test run at " + tps + " transactions per second for " + runSeconds + " seconds using "
+                + threadCount + " virtual threads");
+
+        for (int t = 0; t < threadCount; t++) {
+
+            final int firstDroneIdx = t;
+
+            // Seed each thread from 'r' so runs stay reproducible...
+            final Random threadRandom = new Random(r.nextLong());
+
+            // Stagger start times so we don't get a burst every interval...
+            final long firstDueNs = startNs + ((t * 1000000000L) / tps);
+
+            threads[t] = threadFactory.newThread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    // This thread owns drones firstDroneIdx, firstDroneIdx +
+                    // threadCount, firstDroneIdx + (2 * threadCount)...
+                    int droneIdx = firstDroneIdx;
+                    long nextDueNs = firstDueNs;
+
+                    try {
+                        while (nextDueNs < endNs) {
+
+                            long waitNs = nextDueNs - System.nanoTime();
+
+                            if (waitNs > 0) {
+                                Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+                            } else if (-waitNs > threadIntervalNs) {
+                                // We've fallen behind - don't try and catch up in a burst...
+                                nextDueNs = System.nanoTime();
+                            }
+
+                            int speedMps = threadRandom.nextInt(10);
+                            latitudes[droneIdx] = latitudes[droneIdx] + 0.01;
+
+                            reportLocationSync(firstDroneId + droneIdx, latitudes[droneIdx], longitudes[droneIdx],
+                                    speedMps);
+
+                            long count = counter.incrementAndGet();
+
+                            if (count % 100000 == 0) {
+                                printStatus(count);
+                            }
+
+                            droneIdx += threadCount;
+
+                            if (droneIdx >= size) {
+                                droneIdx = firstDroneIdx;
+                            }
+
+                            nextDueNs += threadIntervalNs;
+                        }
+                    } catch (InterruptedException e) {
+                        error(e.getMessage());
+                    }
+                }
+            });
+
+            threads[t].start();
+        }
+
+        for (int t = 0; t < threadCount; t++) {
+            threads[t].join();
+        }
+
+        stats.setElapsedMs((System.nanoTime() - startNs) / 1000000);
+
+    }
+
+    /**
+     * Call ReportLocation and wait for the answer. This is where per-drone
+     * logic that needs to see the result would go.
+     * 
+     * @param droneId
+     * @param latitude
+     * @param longitude
+     * @param speedMps
+     */
+    private void reportLocationSync(long droneId, double latitude, double longitude, int speedMps) {
+
+        try {
+            ClientResponse response = client.callProcedure("ReportLocation", droneId, latitude, longitude, speedMps);
+            stats.report(response);
+        } catch (ProcCallException e) {
+            msg("Error Code " + e.getClientResponse().getStatusString());
+            stats.report(e.getClientResponse());
         } catch (Exception e) {
             error(e.getMessage());
+            stats.reportError();
         }
 
     }
 
+    /**
+     * Get a ThreadFactory that creates virtual threads. We use reflection so
+     * the rest of the demo still compiles and runs on Java 8.
+     * 
+     * @return a ThreadFactory for virtual threads
+     * @throws Exception if this JVM doesn't have virtual threads
+     */
+    static ThreadFactory newVirtualThreadFactory() throws Exception {
+
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "drone-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new Exception("Virtual threads need Java 21 or later, this is Java "
+                    + System.getProperty("java.version"), e);
+        }
+
+    }
+
+    /**
+     * Set starting positions for our drones. Positions depend on the drone
+     * id rather than the array index, so clients with different values of
+     * firstDroneId don't fly the same paths.
+     * 
+     * @param latitudes
+     * @param longitudes
+     */
+    private void initLocations(double[] latitudes, double[] longitudes) {
+
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = baseLatitude;
+            longitudes[i] = baseLongitude + ((firstDroneId + i) / 10000f) % 180;
+        }
+
+    }
+
+    /**
+     * Call GetStatus and print what it tells us.
+     * 
+     * @param counter - how many transactions we've sent so far
+     */
+    private void printStatus(long counter) {
+
+        try {
+            ClientResponse status = client.callProcedure("GetStatus");
+
+            msg ("Transaction #" + counter);
+            msg("Drone Activity By Minute:" );
+            msg(System. lineSeparator() + status.getResults()[0].toFormattedString());
+            msg("Missing Drones By Minute:"); 
+            msg(System. lineSeparator() + status.getResults()[1].toFormattedString());
+        } catch (Exception e) {
+            error(e.getMessage());
+        }
+
+    }
+
+    /**
+     * @return true if we have at least one working connection to VoltDB
+     */
+    boolean isConnected() {
+        return client != null && !client.getConnectedHostList().isEmpty();
+    }
+
+    /**
+     * @return counters and latencies for this run
+     */
+    LoadStats getStats() {
+        return stats;
+    }
+
     /**
      * Create schema and metadata used by demo if needed.
      * 
      * @throws Exception
      */
-    private void createSchemaIfNeeded() throws Exception {
+    void createSchemaIfNeeded() throws Exception {
 
         VoltDBSchemaBuilder b = new VoltDBSchemaBuilder(ddlStatements, procStatements, null, "taskMigrateProcs.jar",
                 client, "taskmigratedemo", testProcName, testParams, null);
@@ -364,7 +661,7 @@ public class TaskMigrateDemoClient {
 
     }
 
-    private void disconnect() {
+    void disconnect() {
         try {
 
             client.drain();
@@ -383,6 +680,33 @@ public class TaskMigrateDemoClient {
 
     }
 
+    /**
+     * Create a ProcessBuilder that runs 'mainClass' in a new JVM, using the
+     * same java binary, classpath and -X options (e.g. -Xmx) as this one.
+     *
+     * @param mainClass
+     * @param args
+     * @return a ProcessBuilder ready to start
+     */
+    static ProcessBuilder newJvmProcessBuilder(Class<?> mainClass, String... args) {
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+
+        for (String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (jvmArg.startsWith("-X")) {
+                command.add(jvmArg);
+            }
+        }
+
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(Arrays.asList(args));
+
+        return new ProcessBuilder(command);
+    }
+
     public static void msg(String message) {
 
         SimpleDateFormat sdfDate = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -0,0 +1,400 @@
+package org.voltdb.tastmigratedemo;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a TaskMigrateDemoClient run across several TaskMigrateDemoWorker
+ * JVMs, so we can generate more load than a single process can. Each worker
+ * gets its own range of drone ids, its own share of the TPS and its own
+ * random seed. Workers start at the same moment and their results are merged
+ * into a single report.
+ *
+ * @author drolfe
+ *
+ */
+public class TaskMigrateDemoCoordinator {
+
+    /**
+     * How long a newly launched worker has to start listening and tell us
+     * its port
+     */
+    private static final int WORKER_CONNECT_TIMEOUT_MS = 30000;
+
+    /**
+     * How long between workers saying READY and them starting
+     */
+    private static final int START_DELAY_MS = 2000;
+
+    /**
+     * How long a worker has to connect to VoltDB and say READY
+     */
+    private static final int READY_TIMEOUT_MS = 60000;
+
+    /**
+     * How long past the end of the run a worker has to drain and send RESULT
+     */
+    private static final int RESULT_MARGIN_MS = 60000;
+
+    /**
+     * How long to wait for a launched worker to exit once we're done with it
+     */
+    private static final int WORKER_EXIT_TIMEOUT_MS = 10000;
+
+    /**
+     * Seed used by TaskMigrateDemoClient. Worker 'n' uses BASE_SEED + n.
+     */
+    private static final long BASE_SEED = 42;
+
+    /**
+     * Workers we launched ourselves and need to tidy up
+     */
+    List<Process> launchedWorkers = new ArrayList<>();
+
+    /**
+     * Connections to workers
+     */
+    List<Socket> sockets = new ArrayList<>();
+    List<BufferedReader> readers = new ArrayList<>();
+    List<PrintWriter> writers = new ArrayList<>();
+
+    /**
+     * Run the Task and Migrate demo using several worker JVMs.
+     * Parameters: hostnames, tps, size, seconds, workers
+     * where 'workers' is either a number of worker JVMs to launch on this
+     * machine, or a comma delimited list of host:port for workers that are
+     * already running.
+     * e.g.: localhost 120000 10000000 120 4
+     * or:   vdb1,vdb2 300000 10000000 120 gen1:21300,gen2:21300
+     */
+    public static void main(String[] args) {
+
+        msg("Parameters:" + Arrays.toString(args));
+
+        if (args.length != 5) {
+            msg("Usage: hostnames tps size seconds workerCount|host:port,host:port...");
+            System.exit(1);
+        }
+
+        final String hostnames = args[0];
+        final long tps = Long.parseLong(args[1]);
+        final int size = Integer.parseInt(args[2]);
+        final int seconds = Integer.parseInt(args[3]);
+        final String workers = args[4];
+
+        // Create schema once, rather than having workers race to do it...
+        TaskMigrateDemoClient schemaClient = new TaskMigrateDemoClient(hostnames, BASE_SEED, seconds, tps, size);
+        try {
+            schemaClient.createSchemaIfNeeded();
+        } catch (Exception e) {
+            error(e.toString());
+            System.exit(1);
+        }
+        schemaClient.disconnect();
+        schemaClient = null;
+
+        TaskMigrateDemoCoordinator coordinator = new TaskMigrateDemoCoordinator();
+        LoadStats mergedStats = null;
+
+        try {
+            coordinator.connectWorkers(workers);
+            mergedStats = coordinator.run(hostnames, tps, size, seconds);
+        } catch (Exception e) {
+            error(e.toString());
+        } finally {
+            coordinator.close();
+        }
+
+        if (mergedStats == null) {
+            System.exit(1);
+        }
+
+        mergedStats.printReport("Merged results for " + coordinator.sockets.size() + " workers:");
+        msg("Finished");
+
+    }
+
+    /**
+     * Connect to our workers, launching them first if needed.
+     *
+     * @param workers - either a worker count or a list of host:port
+     * @throws Exception
+     */
+    void connectWorkers(String workers) throws Exception {
+
+        if (workers.matches("[0-9]+")) {
+
+            final int workerCount = Integer.parseInt(workers);
+            List<CompletableFuture<Integer>> workerPorts = new ArrayList<>();
+
+            for (int i = 0; i < workerCount; i++) {
+                workerPorts.add(launchLocalWorker());
+            }
+
+            // Each worker picks a free port and tells us what it is, so we
+            // can't end up talking to something else that was already there...
+            for (int i = 0; i < workerCount; i++) {
+                final int port = workerPorts.get(i).get(WORKER_CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                connectWorker("127.0.0.1", port, WORKER_CONNECT_TIMEOUT_MS);
+            }
+
+        } else {
+
+            String[] workerArray = workers.split(",");
+
+            for (int i = 0; i < workerArray.length; i++) {
+                String[] hostAndPort = workerArray[i].split(":");
+                connectWorker(hostAndPort[0], Integer.parseInt(hostAndPort[1]), 0);
+            }
+        }
+
+    }
+
+    /**
+     * Start a worker JVM on this machine using our own classpath. It listens
+     * on any free loopback port and will exit after a single run. We pass
+     * its output through to ours.
+     *
+     * @return the port the worker is listening on, once it tells us
+     * @throws Exception
+     */
+    private CompletableFuture<Integer> launchLocalWorker() throws Exception {
+
+        ProcessBuilder pb = TaskMigrateDemoClient.newJvmProcessBuilder(TaskMigrateDemoWorker.class, "0", "127.0.0.1", "1");
+        pb.redirectErrorStream(true);
+
+        msg("Launching worker");
+        final Process p = pb.start();
+        launchedWorkers.add(p);
+
+        final CompletableFuture<Integer> port = new CompletableFuture<>();
+
+        Thread outputPump = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try (BufferedReader in = new BufferedReader(
+                        new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (line.startsWith(TaskMigrateDemoWorker.LISTENING_PREFIX)) {
+                            port.complete(
+                                    Integer.parseInt(line.substring(TaskMigrateDemoWorker.LISTENING_PREFIX.length())));
+                        } else {
+                            System.out.println(line);
+                        }
+                    }
+                } catch (Exception e) {
+                    error(e.getMessage());
+                }
+
+                // Does nothing if we already have the port...
+                port.completeExceptionally(new Exception("Worker exited before it started listening"));
+            }
+        });
+
+        outputPump.setDaemon(true);
+        outputPump.start();
+
+        return port;
+
+    }
+
+    /**
+     * Connect to a worker, retrying for up to timeoutMs while it starts.
+     *
+     * @param host
+     * @param port
+     * @param timeoutMs
+     * @throws Exception
+     */
+    private void connectWorker(String host, int port, int timeoutMs) throws Exception {
+
+        final long giveUpMs = System.currentTimeMillis() + timeoutMs;
+
+        msg("Connect to worker " + host + ":" + port + "...");
+
+        while (true) {
+            try {
+                Socket s = new Socket(host, port);
+                sockets.add(s);
+                readers.add(new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)));
+                writers.add(new PrintWriter(s.getOutputStream(), true));
+                return;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() > giveUpMs) {
+                    throw new Exception("Worker connection to " + host + ":" + port + " failed.." + e.getMessage(),
+                            e);
+                }
+                Thread.sleep(250);
+            }
+        }
+
+    }
+
+    /**
+     * Give each worker its share of drones and TPS, start them together and
+     * merge their results.
+     *
+     * @param hostnames
+     * @param tps
+     * @param size
+     * @param seconds
+     * @return merged stats
+     * @throws Exception
+     */
+    LoadStats run(String hostnames, long tps, int size, int seconds) throws Exception {
+
+        final int workerCount = sockets.size();
+
+        if (workerCount == 0 || workerCount > size) {
+            throw new Exception("Need between 1 and " + size + " workers, have " + workerCount);
+        }
+
+        if (tps < workerCount) {
+            throw new Exception("Need at least 1 TPS per worker, have " + tps + " TPS for " + workerCount + " workers");
+        }
+
+        long firstDroneId = 0;
+
+        for (int i = 0; i < workerCount; i++) {
+
+            // Spread any remainders across the first few workers...
+            final int workerSize = (size / workerCount) + (i < size % workerCount ? 1 : 0);
+            final long workerTps = (tps / workerCount) + (i < tps % workerCount ? 1 : 0);
+
+            writers.get(i).println(TaskMigrateDemoWorker.RUN + " " + hostnames + " " + workerTps + " " + firstDroneId
+                    + " " + workerSize + " " + seconds + " " + (BASE_SEED + i));
+
+            firstDroneId += workerSize;
+        }
+
+        for (int i = 0; i < workerCount; i++) {
+            sockets.get(i).setSoTimeout(READY_TIMEOUT_MS);
+            expect(i, TaskMigrateDemoWorker.READY);
+        }
+
+        msg("All workers ready, starting test run at " + tps + " transactions per second for " + seconds
+                + " seconds");
+
+        for (int i = 0; i < workerCount; i++) {
+            writers.get(i).println(TaskMigrateDemoWorker.START + " " + START_DELAY_MS);
+        }
+
+        LoadStats mergedStats = new LoadStats();
+        final int resultTimeoutMs = START_DELAY_MS + (seconds * 1000) + RESULT_MARGIN_MS;
+
+        for (int i = 0; i < workerCount; i++) {
+            sockets.get(i).setSoTimeout(resultTimeoutMs);
+            LoadStats workerStats = LoadStats.fromWireString(expect(i, TaskMigrateDemoWorker.RESULT));
+
+            // A worker that did nothing useful would quietly drag the totals down...
+            if (workerStats.getOkCount() == 0) {
+                throw new Exception("Worker " + sockets.get(i).getRemoteSocketAddress() + " completed no transactions ("
+                        + workerStats.getTotalCount() + " failed)");
+            }
+
+            mergedStats.merge(workerStats);
+        }
+
+        return mergedStats;
+
+    }
+
+    /**
+     * Read a line from worker 'i' and check it starts with 'keyword'.
+     *
+     * @param i
+     * @param keyword
+     * @return whatever follows the keyword
+     * @throws Exception
+     */
+    private String expect(int i, String keyword) throws Exception {
+
+        String line = null;
+
+        try {
+            line = TaskMigrateDemoWorker.readLine(readers.get(i));
+        } catch (SocketTimeoutException e) {
+            throw new Exception("Worker " + sockets.get(i).getRemoteSocketAddress() + " didn't send " + keyword
+                    + " within " + sockets.get(i).getSoTimeout() + "ms", e);
+        }
+
+        if (!line.startsWith(keyword)) {
+            throw new Exception("Worker " + sockets.get(i).getRemoteSocketAddress() + " said '" + line
+                    + "', expected " + keyword);
+        }
+
+        return line.substring(keyword.length()).trim();
+    }
+
+    /**
+     * Close connections and wait for any workers we launched.
+     */
+    void close() {
+
+        for (Socket s : sockets) {
+            try {
+                s.close();
+            } catch (Exception e) {
+                error(e.getMessage());
+            }
+        }
+
+        // Workers we never managed to talk to will still be waiting for us...
+        for (Process p : launchedWorkers) {
+            try {
+                if (!p.waitFor(WORKER_EXIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    error("Worker didn't exit, killing it");
+                    p.destroy();
+                }
+            } catch (InterruptedException e) {
+                error(e.getMessage());
+                p.destroy();
+            }
+        }
+
+    }
+
+    public static void error(String message) {
+        msg("Error: " + message);
+
+    }
+
+    public static void msg(String message) {
+        TaskMigrateDemoClient.msg("Coordinator:" + message);
+    }
+
+}
@@ -0,0 +1,304 @@
+package org.voltdb.tastmigratedemo;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs TaskMigrateDemoClient in 'async' and 'vthreads' mode for several
+ * different numbers of drones and prints throughput, latency and heap usage
+ * for each run side by side. 'vthreads' mode needs Java 21 or later.
+ * <p>
+ * Each run gets its own JVM, so neither mode benefits from the other's JIT
+ * warm up or leftover heap. Which mode goes first alternates from one size
+ * to the next, so neither mode always gets the larger drone_locations
+ * table.
+ *
+ * @author drolfe
+ *
+ */
+public class TaskMigrateDemoModeComparison {
+
+    /**
+     * Default numbers of drones to try
+     */
+    static final int[] DEFAULT_SIZES = { 10000, 1000000, 10000000 };
+
+    /**
+     * How often we check heap usage
+     */
+    private static final int HEAP_SAMPLE_INTERVAL_MS = 100;
+
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * First argument that tells main to do a single run in this JVM
+     */
+    static final String SINGLE_RUN_FLAG = "--single";
+
+    /**
+     * A single run prints its line for the results table after this
+     */
+    static final String RESULT_PREFIX = "COMPARISON_RESULT:";
+
+    /**
+     * Run both modes for each size.
+     * Parameters: hostnames, tps, seconds, [sizes], [threads]
+     * where sizes is a comma delimited list of drone counts and threads is
+     * the maximum number of virtual threads to use.
+     * e.g.: localhost 30000 60
+     * or:   localhost 30000 60 10000,1000000,10000000 100000
+     */
+    public static void main(String[] args) {
+
+        msg("Parameters:" + Arrays.toString(args));
+
+        if (args.length > 0 && args[0].equals(SINGLE_RUN_FLAG)) {
+            singleRun(args);
+            return;
+        }
+
+        final String hostnames = args[0];
+        final long tps = Long.parseLong(args[1]);
+        final int seconds = Integer.parseInt(args[2]);
+        int[] sizes = DEFAULT_SIZES;
+        int maxThreads = TaskMigrateDemoClient.DEFAULT_MAX_VIRTUAL_THREADS;
+
+        if (tps <= 0) {
+            error("tps must be greater than zero, not " + tps);
+            System.exit(1);
+        }
+
+        if (args.length > 3) {
+            String[] sizeArray = args[3].split(",");
+            sizes = new int[sizeArray.length];
+            for (int i = 0; i < sizeArray.length; i++) {
+                sizes[i] = Integer.parseInt(sizeArray[i]);
+            }
+        }
+
+        if (args.length > 4) {
+            maxThreads = Integer.parseInt(args[4]);
+        }
+
+        List<String> results = new ArrayList<>();
+        results.add(String.format("%-8s %10s %8s %10s %8s %8s %8s %8s %12s", "MODE", "DRONES", "THREADS", "OK_TPS",
+                "ERR_PCT", "AVG_MS", "P99_MS", "MAX_MS", "PEAK_HEAP_MB"));
+
+        for (int i = 0; i < sizes.length; i++) {
+
+            final int size = sizes[i];
+            final int threadCount = Math.min(size, maxThreads);
+
+            if (i % 2 == 0) {
+                results.add(runInNewJvm(hostnames, tps, seconds, size, TaskMigrateDemoClient.MODE_ASYNC, 1));
+                results.add(runInNewJvm(hostnames, tps, seconds, size, TaskMigrateDemoClient.MODE_VIRTUAL_THREADS,
+                        threadCount));
+            } else {
+                results.add(runInNewJvm(hostnames, tps, seconds, size, TaskMigrateDemoClient.MODE_VIRTUAL_THREADS,
+                        threadCount));
+                results.add(runInNewJvm(hostnames, tps, seconds, size, TaskMigrateDemoClient.MODE_ASYNC, 1));
+            }
+
+        }
+
+        msg("Results:");
+        for (String line : results) {
+            msg(line);
+        }
+
+        msg("Finished");
+
+    }
+
+    /**
+     * Do a single run in this JVM and print its line for the results table.
+     * If the run fails we print nothing and exit with a non-zero status.
+     * Parameters: --single, hostnames, tps, seconds, size, mode, threads
+     *
+     * @param args
+     */
+    private static void singleRun(String[] args) {
+
+        final String hostnames = args[1];
+        final long tps = Long.parseLong(args[2]);
+        final int seconds = Integer.parseInt(args[3]);
+        final int size = Integer.parseInt(args[4]);
+        final String mode = args[5];
+        final int threadCount = Integer.parseInt(args[6]);
+
+        final String result = runOnce(hostnames, tps, seconds, size, mode, threadCount);
+
+        if (result == null) {
+            System.exit(1);
+        }
+
+        System.out.println(RESULT_PREFIX + result);
+
+    }
+
+    /**
+     * Run the demo once in a new JVM, passing its output through.
+     *
+     * @param hostnames
+     * @param tps
+     * @param seconds
+     * @param size
+     * @param mode
+     * @param threadCount
+     * @return a line for the results table
+     */
+    private static String runInNewJvm(String hostnames, long tps, int seconds, int size, String mode,
+            int threadCount) {
+
+        String result = null;
+
+        ProcessBuilder pb = TaskMigrateDemoClient.newJvmProcessBuilder(TaskMigrateDemoModeComparison.class,
+                SINGLE_RUN_FLAG, hostnames, Long.toString(tps), Integer.toString(seconds), Integer.toString(size),
+                mode, Integer.toString(threadCount));
+        pb.redirectErrorStream(true);
+
+        try {
+            Process p = pb.start();
+
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith(RESULT_PREFIX)) {
+                        result = line.substring(RESULT_PREFIX.length());
+                    } else {
+                        System.out.println(line);
+                    }
+                }
+            }
+
+            if (p.waitFor() != 0) {
+                error(mode + " with " + size + " drones exited with status " + p.exitValue());
+                result = null;
+            }
+
+        } catch (Exception e) {
+            error(e.toString());
+            result = null;
+        }
+
+        if (result == null) {
+            error("No result for " + mode + " with " + size + " drones");
+            return String.format("%-8s %10d %8d %10s", mode, size, threadCount, "FAILED");
+        }
+
+        return result;
+    }
+
+    /**
+     * Run the demo once in the requested mode.
+     *
+     * @param hostnames
+     * @param tps
+     * @param seconds
+     * @param size
+     * @param mode
+     * @param threadCount
+     * @return a line for the results table, or null if the run failed
+     */
+    private static String runOnce(String hostnames, long tps, int seconds, int size, String mode,
+            int threadCount) {
+
+        msg("Running " + mode + " with " + size + " drones");
+
+        final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        final AtomicLong peakHeapBytes = new AtomicLong(memoryBean.getHeapMemoryUsage().getUsed());
+
+        Thread heapSampler = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        peakHeapBytes.set(Math.max(peakHeapBytes.get(), memoryBean.getHeapMemoryUsage().getUsed()));
+                        Thread.sleep(HEAP_SAMPLE_INTERVAL_MS);
+                    }
+                } catch (InterruptedException e) {
+                    // We're done...
+                }
+            }
+        });
+
+        heapSampler.setDaemon(true);
+        heapSampler.start();
+
+        TaskMigrateDemoClient demoClient = new TaskMigrateDemoClient(hostnames, 42, seconds, tps, size);
+
+        try {
+            if (!demoClient.isConnected()) {
+                error("Unable to connect to VoltDB at " + hostnames);
+                return null;
+            }
+
+            demoClient.createSchemaIfNeeded();
+
+            if (mode.equals(TaskMigrateDemoClient.MODE_VIRTUAL_THREADS)) {
+                demoClient.loadDataVirtualThreads(size, threadCount);
+            } else {
+                demoClient.loadData(size);
+            }
+
+        } catch (Exception e) {
+            error(e.toString());
+            return null;
+        } finally {
+            demoClient.disconnect();
+            heapSampler.interrupt();
+        }
+
+        LoadStats stats = demoClient.getStats();
+        stats.printReport("Results for " + mode + " with " + size + " drones:");
+
+        if (stats.getOkCount() == 0) {
+            error("No transactions completed for " + mode + " with " + size + " drones");
+            return null;
+        }
+
+        return String.format("%-8s %10d %8d %10d %8.2f %8.2f %8s %8d %12d", mode, size, threadCount,
+                stats.getAchievedTps(), stats.getErrorPct(), stats.getAverageMs(), stats.formatPercentileMs(99), stats.getMaxLatencyMs(),
+                peakHeapBytes.get() / MB);
+    }
+
+    public static void error(String message) {
+        msg("Error: " + message);
+
+    }
+
+    public static void msg(String message) {
+        TaskMigrateDemoClient.msg(message);
+    }
+
+}
@@ -0,0 +1,241 @@
+package org.voltdb.tastmigratedemo;
+
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2019 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Worker that runs part of a TaskMigrateDemoClient load on behalf of a
+ * TaskMigrateDemoCoordinator. The protocol is one line of text per message:
+ *
+ * <pre>
+ * coordinator: RUN hostnames tps firstDroneId size seconds seed
+ * worker:      READY                 (once connected to VoltDB)
+ * coordinator: START delayMs         (start this long after receiving START)
+ * worker:      RESULT stats          (see LoadStats.toWireString)
+ * </pre>
+ *
+ * If anything goes wrong the worker replies 'ERROR message' instead.
+ * <p>
+ * The protocol has no authentication, so by default we only listen on the
+ * loopback address. To accept a coordinator on another machine you have to
+ * give the address to listen on explicitly.
+ *
+ * @author drolfe
+ *
+ */
+public class TaskMigrateDemoWorker {
+
+    public static final String RUN = "RUN";
+    public static final String READY = "READY";
+    public static final String START = "START";
+    public static final String RESULT = "RESULT";
+    public static final String ERROR = "ERROR";
+
+    /**
+     * Printed to stdout, followed by the port, once we're listening. Lets a
+     * coordinator that launched us with port 0 find out which port we got.
+     */
+    public static final String LISTENING_PREFIX = "WORKER_LISTENING:";
+
+    /**
+     * Wait for a coordinator to connect and run whatever it asks for.
+     * Parameters: port [bindAddress] [runs]. bindAddress defaults to the
+     * loopback address. If 'runs' is given we exit after that many runs,
+     * otherwise we keep going until killed.
+     * e.g.: 21300
+     * or:   21300 192.168.0.60
+     * A port of 0 means use any free port.
+     */
+    public static void main(String[] args) {
+
+        msg("Parameters:" + Arrays.toString(args));
+
+        final int port = Integer.parseInt(args[0]);
+        InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        int runsLeft = -1;
+
+        try {
+            if (args.length > 1) {
+                bindAddress = InetAddress.getByName(args[1]);
+            }
+        } catch (Exception e) {
+            error(e.toString());
+            System.exit(1);
+        }
+
+        if (args.length > 2) {
+            runsLeft = Integer.parseInt(args[2]);
+        }
+
+        try (ServerSocket serverSocket = new ServerSocket(port, 0, bindAddress)) {
+
+            msg("Waiting for coordinator on " + bindAddress.getHostAddress() + ":" + serverSocket.getLocalPort());
+            System.out.println(LISTENING_PREFIX + serverSocket.getLocalPort());
+            System.out.flush();
+
+            while (runsLeft != 0) {
+
+                try (Socket s = serverSocket.accept()) {
+                    msg("Coordinator connected from " + s.getRemoteSocketAddress());
+                    serve(s);
+                } catch (Exception e) {
+                    error(e.toString());
+                }
+
+                if (runsLeft > 0) {
+                    runsLeft--;
+                }
+            }
+
+        } catch (Exception e) {
+            error(e.toString());
+            System.exit(1);
+        }
+
+        msg("Finished");
+
+    }
+
+    /**
+     * Handle a single run for a coordinator. Any problem is reported back as
+     * an ERROR line.
+     *
+     * @param s
+     * @throws Exception if we can't talk to the coordinator
+     */
+    private static void serve(Socket s) throws Exception {
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+
+        try {
+            runForCoordinator(in, out);
+        } catch (Exception e) {
+            error(e.toString());
+            // Keep the reply on one line...
+            out.println(ERROR + " " + e.toString().replace('\n', ' ').replace('\r', ' '));
+        }
+
+    }
+
+    /**
+     * Read RUN and START from the coordinator, do the run and send back the
+     * result.
+     *
+     * @param in
+     * @param out
+     * @throws Exception
+     */
+    private static void runForCoordinator(BufferedReader in, PrintWriter out) throws Exception {
+
+        String[] runFields = readLine(in).split(" ");
+
+        if (runFields.length != 7 || !runFields[0].equals(RUN)) {
+            out.println(ERROR + " expected '" + RUN + " hostnames tps firstDroneId size seconds seed', got "
+                    + Arrays.toString(runFields));
+            return;
+        }
+
+        final String hostnames = runFields[1];
+        final long tps = Long.parseLong(runFields[2]);
+        final long firstDroneId = Long.parseLong(runFields[3]);
+        final int size = Integer.parseInt(runFields[4]);
+        final int seconds = Integer.parseInt(runFields[5]);
+        final long seed = Long.parseLong(runFields[6]);
+
+        msg("Drones " + firstDroneId + " to " + (firstDroneId + size - 1) + " at " + tps + " TPS, seed " + seed);
+
+        TaskMigrateDemoClient demoClient = new TaskMigrateDemoClient(hostnames, seed, seconds, tps, size,
+                firstDroneId);
+
+        try {
+            if (!demoClient.isConnected()) {
+                out.println(ERROR + " unable to connect to VoltDB at " + hostnames);
+                return;
+            }
+
+            out.println(READY);
+
+            String[] startFields = readLine(in).split(" ");
+
+            if (startFields.length != 2 || !startFields[0].equals(START)) {
+                out.println(ERROR + " expected '" + START + " delayMs', got " + Arrays.toString(startFields));
+                return;
+            }
+
+            // A relative delay means clock skew between hosts doesn't matter...
+            final long delayMs = Long.parseLong(startFields[1]);
+
+            if (delayMs > 0) {
+                msg("Starting in " + delayMs + "ms");
+                Thread.sleep(delayMs);
+            }
+
+            demoClient.loadData(size);
+
+        } finally {
+            demoClient.disconnect();
+        }
+
+        demoClient.getStats().printReport("Results for this worker:");
+        out.println(RESULT + " " + demoClient.getStats().toWireString());
+
+    }
+
+    /**
+     * Read a line, complaining if the other end has gone away.
+     *
+     * @param in
+     * @return the line
+     * @throws Exception
+     */
+    static String readLine(BufferedReader in) throws Exception {
+
+        String line = in.readLine();
+
+        if (line == null) {
+            throw new Exception("Connection closed unexpectedly");
+        }
+
+        return line;
+    }
+
+    public static void error(String message) {
+        msg("Error: " + message);
+
+    }
+
+    public static void msg(String message) {
+        TaskMigrateDemoClient.msg("Worker:" + message);
+    }
+
+}